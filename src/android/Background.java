@@ -28,6 +28,7 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
 import android.os.PowerManager;
 import android.os.Build;
 import android.util.Log;
@@ -57,36 +58,48 @@ public class Background extends CordovaPlugin  {
     private static final String ACTION_CANCEL_ALARM = "cancelAlarm";
     // Constant value identifying the requested action to report the last StartUp Timestamp
     private static final String ACTION_GET_STARTUP_TIMESTAMP = "getStartupTimestamp";
+    // Constant value identifying the requested action to start injecting synthetic events (debug builds only)
+    private static final String ACTION_START_LOAD_GENERATOR = "startLoadGenerator";
+    // Constant value identifying the requested action to stop injecting synthetic events and report the results
+    private static final String ACTION_STOP_LOAD_GENERATOR = "stopLoadGenerator";
+    // Constant value identifying the requested action to report the results of the running or last load generator
+    private static final String ACTION_GET_LOAD_GENERATOR_REPORT = "getLoadGeneratorReport";
+    // Constant value identifying the requested action to acknowledge synthetic events received by JavaScript
+    private static final String ACTION_ACKNOWLEDGE_SYNTHETIC_EVENTS = "acknowledgeSyntheticEvents";
 
     // Constant value identifying the unique application intent to use for wakeup-calls from Android system to the Activity
-    private static final String INTENT_ALARM_WAKEUP_ONCE = "de.condat.ssc.mobile.WAKEUP_ONCE";
+    static final String INTENT_ALARM_WAKEUP_ONCE = "de.condat.ssc.mobile.WAKEUP_ONCE";
 
     // Constant value identifying the device state change, that the dreaming mode was started
-    private static final String STATE_DEVICE_DREAMING_STARTED = "DEVICE_DREAMING_STARTED";
+    static final String STATE_DEVICE_DREAMING_STARTED = "DEVICE_DREAMING_STARTED";
     // Constant value identifying the device state change, that the dreaming mode was stopped
-    private static final String STATE_DEVICE_DREAMING_STOPPED = "DEVICE_DREAMING_STOPPED";
+    static final String STATE_DEVICE_DREAMING_STOPPED = "DEVICE_DREAMING_STOPPED";
     // Constant value identifying the device state change, that the screen has been switched off (both manually and automatically)
-    private static final String STATE_DEVICE_SCREEN_OFF = "DEVICE_SCREEN_OFF";
+    static final String STATE_DEVICE_SCREEN_OFF = "DEVICE_SCREEN_OFF";
     // Constant value identifying the device state change, that the screen has been switched on (both manually and automatically)
-    private static final String STATE_DEVICE_SCREEN_ON = "DEVICE_SCREEN_ON";
+    static final String STATE_DEVICE_SCREEN_ON = "DEVICE_SCREEN_ON";
     // Constant value identifying the state change, that the Activity has been woken up externally from the Android AlarmManager
-    private static final String STATE_ALARM_WAKEUP_ONCE = "ALARM_WAKEUP_ONCE";
+    static final String STATE_ALARM_WAKEUP_ONCE = "ALARM_WAKEUP_ONCE";
 
     // Constant value identifying the app state change, that the container activity was started
     private static final String STATE_ACTIVITY_STARTED = "ACTIVITY_STARTED";
     // Constant value identifying the app state change, that the container activity was paused
-    private static final String STATE_ACTIVITY_PAUSED  = "ACTIVITY_PAUSED";
+    static final String STATE_ACTIVITY_PAUSED  = "ACTIVITY_PAUSED";
     // Constant value identifying the app state change, that the container activity was resumed
-    private static final String STATE_ACTIVITY_RESUMED = "ACTIVITY_RESUMED";
+    static final String STATE_ACTIVITY_RESUMED = "ACTIVITY_RESUMED";
     // Constant value identifying the app state change, that the container activity was stopped
     private static final String STATE_ACTIVITY_STOPPED = "ACTIVITY_STOPPED";
     // Constant value identifying the app state change, that the container activity has destroyed
     private static final String STATE_ACTIVITY_DESTROYED = "ACTIVITY_DESTROYED";
 
     // Constant value representing the unique log label for this plugin class
-    private static final String LOG_TAG = "BackgroundPlugin";
+    static final String LOG_TAG = "BackgroundPlugin";
     // Constant value representing the unique JSON parameter name
     private static final String JSON_KEY_NAME = "state";
+    // Constant value representing the JSON parameter name flagging results caused by the load generator
+    private static final String JSON_KEY_SYNTHETIC = "synthetic";
+    // Constant value representing the JSON parameter name holding the sequence number of a synthetic event
+    private static final String JSON_KEY_SEQUENCE = "seq";
 
     // reference to the wrapping broadcast receiver implementation for device state changes
     public BackgroundBroadcastReceiver backgroundReceiver;
@@ -109,6 +122,10 @@ public class Background extends CordovaPlugin  {
     // class variable indicating any successful requested plugin usage registration of AlarmBroadcastReceiver
     private static boolean registered__alarmReceiver = false;
 
+    // reference to the synthetic event generator used for soak testing, only ever set in debuggable builds
+    // (written on the Cordova thread, read from receiver, UI and generator threads)
+    volatile SyntheticLoadGenerator loadGenerator = null;
+
     // class variable as a pseudo Singleton-Pattern implementation
     private static Background instance = null;
 
@@ -116,7 +133,7 @@ public class Background extends CordovaPlugin  {
     private final Date startUpTime;
 
     // Hashcode des "this" Objekts, um paralelle Instanzen im Log zu triggern.
-    private final int hash;
+    final int hash;
 
     /*
      * Constructor.
@@ -156,9 +173,13 @@ public class Background extends CordovaPlugin  {
     @Override
     public boolean execute(String action, JSONArray args, CallbackContext newCallbackContext) throws JSONException {
 
-        Log.i(LOG_TAG, "Method 'execute()' called @" + this.hash);
+        // acknowledgements may still arrive after the generator was stopped, they are never logged
+        if (!isLoadGeneratorActive() && !action.equals(ACTION_ACKNOWLEDGE_SYNTHETIC_EVENTS))
+        {
+            Log.i(LOG_TAG, "Method 'execute()' called @" + this.hash);
 
-        Log.d(LOG_TAG, "Executing action " + action);
+            Log.d(LOG_TAG, "Executing action " + action);
+        }
 
         if (action.equals(ACTION_REGISTER_DEVICE_POWER_CHANGES))
         {
@@ -320,6 +341,82 @@ public class Background extends CordovaPlugin  {
                 newCallbackContext.error("startUpTime not set");
             }
         }
+        else if (action.equals(ACTION_START_LOAD_GENERATOR))
+        {
+            if (!isDebuggable())
+            {
+                newCallbackContext.error("load generator is only available in debuggable builds");
+                return true;
+            }
+
+            // expects the configuration object in first - and only - position, all keys are optional
+            JSONObject config = args.optJSONObject(0);
+            if (config == null)
+            {
+                config = new JSONObject();
+            }
+
+            SyntheticLoadGenerator generator;
+            try
+            {
+                generator = new SyntheticLoadGenerator(this, config);
+            }
+            catch (IllegalArgumentException ex)
+            {
+                Log.w(LOG_TAG, "Load generator configuration rejected: " + ex.getMessage());
+                newCallbackContext.error(ex.getMessage());
+                return true;
+            }
+
+            if (this.loadGenerator != null)
+            {
+                this.loadGenerator.stop();
+            }
+            this.loadGenerator = generator;
+            generator.start();
+
+            newCallbackContext.success();
+            return true;
+        }
+        else if (action.equals(ACTION_STOP_LOAD_GENERATOR))
+        {
+            SyntheticLoadGenerator generator = this.loadGenerator;
+            if (generator == null)
+            {
+                newCallbackContext.error("load generator not started");
+                return true;
+            }
+
+            generator.stop();
+            newCallbackContext.success(generator.getReport());
+            return true;
+        }
+        else if (action.equals(ACTION_GET_LOAD_GENERATOR_REPORT))
+        {
+            SyntheticLoadGenerator generator = this.loadGenerator;
+            if (generator == null)
+            {
+                newCallbackContext.error("load generator not started");
+                return true;
+            }
+
+            newCallbackContext.success(generator.getReport());
+            return true;
+        }
+        else if (action.equals(ACTION_ACKNOWLEDGE_SYNTHETIC_EVENTS))
+        {
+            // expects the sequence numbers of all synthetic events handled by JavaScript since the last
+            // acknowledgement, batched into one call; JavaScript passes no callbacks, so no result is sent
+            SyntheticLoadGenerator generator = this.loadGenerator;
+            if (generator != null)
+            {
+                for (int i = 0; i < args.length(); i++)
+                {
+                    generator.onAcknowledged(args.optLong(i, -1));
+                }
+            }
+            return true;
+        }
         return false;
     }
 
@@ -360,6 +457,11 @@ public class Background extends CordovaPlugin  {
 
         removeBackgroundPowerListener();
         removeAlarmReceiver();
+
+        if (this.loadGenerator != null)
+        {
+            this.loadGenerator.stop();
+        }
     }
 
     /**
@@ -395,7 +497,10 @@ public class Background extends CordovaPlugin  {
     @Override
     public void onPause(boolean multitasking)
     {
-        Log.i(LOG_TAG, "Method 'onPause()' called @" + this.hash);
+        if (!isLoadGeneratorActive())
+        {
+            Log.i(LOG_TAG, "Method 'onPause()' called @" + this.hash);
+        }
         // Inform the app
         this.sendUpdate(STATE_ACTIVITY_PAUSED);
     }
@@ -414,7 +519,10 @@ public class Background extends CordovaPlugin  {
      */
     @Override
     public void onResume(boolean multitasking) {
-        Log.i(LOG_TAG, "Method 'onResume()' called @" + this.hash);
+        if (!isLoadGeneratorActive())
+        {
+            Log.i(LOG_TAG, "Method 'onResume()' called @" + this.hash);
+        }
         // Inform the app
         this.sendUpdate(STATE_ACTIVITY_RESUMED);
     }
@@ -446,13 +554,27 @@ public class Background extends CordovaPlugin  {
      */
     public void sendUpdate(String state)
     {
-        Log.i(LOG_TAG, "Method 'sendUpdate(" + state + ")' called @" + this.hash);
+        boolean quiet = isLoadGeneratorActive();
+        if (!quiet)
+        {
+            Log.i(LOG_TAG, "Method 'sendUpdate(" + state + ")' called @" + this.hash);
+        }
+
+        // results caused by a synthetic event are tagged, so JavaScript can acknowledge them
+        SyntheticLoadGenerator generator = this.loadGenerator;
+        long sequence = generator != null ? generator.getAttributedSequence() : -1;
 
+        boolean delivered = false;
         try
         {
             // creating a JSON object holding a single key-value-pair with changed state information
             JSONObject status = new JSONObject();
             status.put(JSON_KEY_NAME, state);
+            if (sequence >= 0)
+            {
+                status.put(JSON_KEY_SYNTHETIC, true);
+                status.put(JSON_KEY_SEQUENCE, sequence);
+            }
 
             //Log.i(LOG_TAG, "sendUpdate " + state);
             //Log.i(LOG_TAG, "registered__backgroundReceiver: " + registered__backgroundReceiver);
@@ -466,8 +588,9 @@ public class Background extends CordovaPlugin  {
                 result.setKeepCallback(true);
                 // send a result back to the calling Cordova implementation
                 callbackContext.sendPluginResult(result);
+                delivered = true;
             }
-            else
+            else if (!quiet)
             {
                 Log.e(LOG_TAG,"CallbackContext not set.");
             }
@@ -476,6 +599,31 @@ public class Background extends CordovaPlugin  {
         {
             Log.e(LOG_TAG,"JSON Error - " + ex.getMessage(), ex);
         }
+
+        if (sequence >= 0)
+        {
+            generator.onUpdatePublished(sequence, delivered);
+        }
+    }
+
+    /*
+     * Checks whether a synthetic load generator is injecting events. Per-event logging is skipped
+     * meanwhile, as it would flood logcat and let the log buffer dominate the measured heap growth.
+     */
+    boolean isLoadGeneratorActive()
+    {
+        SyntheticLoadGenerator generator = this.loadGenerator;
+        return generator != null && generator.isActive();
+    }
+
+    /*
+     * Checks whether the hosting app was built as debuggable. The synthetic load generator is
+     * restricted to such builds so it can never be triggered in a released app.
+     */
+    private boolean isDebuggable()
+    {
+        ApplicationInfo appInfo = this.cordova.getActivity().getApplicationInfo();
+        return (appInfo.flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
     }
 
     /*
@@ -598,11 +746,18 @@ public class Background extends CordovaPlugin  {
         @Override
         public void onReceive(Context context, Intent intent)
         {
-            Log.i(LOG_TAG, "Method 'onReceive()' called @" + this.watcher.hash);
+            boolean quiet = this.watcher.isLoadGeneratorActive();
+            if (!quiet)
+            {
+                Log.i(LOG_TAG, "Method 'onReceive()' called @" + this.watcher.hash);
+            }
 
             String action = intent.getAction();
 
-            Log.d(LOG_TAG, "Intent received: " + action);
+            if (!quiet)
+            {
+                Log.d(LOG_TAG, "Intent received: " + action);
+            }
 
             if( (action.compareTo(Intent.ACTION_DREAMING_STARTED)) == 0 )
             {
@@ -653,9 +808,13 @@ public class Background extends CordovaPlugin  {
         @Override
         public void onReceive(Context context, Intent intent)
         {
-            Log.i(LOG_TAG, "Method 'onReceive()' called @" + this.watcher.hash);
+            boolean quiet = this.watcher.isLoadGeneratorActive();
+            if (!quiet)
+            {
+                Log.i(LOG_TAG, "Method 'onReceive()' called @" + this.watcher.hash);
 
-            Log.i(LOG_TAG, "AlarmBroadcastReceiver - Intent caught: " + intent.getAction());
+                Log.i(LOG_TAG, "AlarmBroadcastReceiver - Intent caught: " + intent.getAction());
+            }
 
             PowerManager pm = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
             PowerManager.WakeLock wl = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "");
@@ -664,7 +823,10 @@ public class Background extends CordovaPlugin  {
 
             //Log.i(LOG_TAG,"AlarmBroadcastReceiver - send event to Cordova Plugin Background Container");
             this.watcher.sendUpdate(STATE_ALARM_WAKEUP_ONCE);
-            Log.i(LOG_TAG, "AlarmBroadcastReceiver - event was sent to Cordova Plugin Background Container");
+            if (!quiet)
+            {
+                Log.i(LOG_TAG, "AlarmBroadcastReceiver - event was sent to Cordova Plugin Background Container");
+            }
 
             //Release the lock
             wl.release();
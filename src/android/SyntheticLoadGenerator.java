@@ -0,0 +1,964 @@
+/*
+       Licensed under MIT.
+
+       Contact Tillerstack GmbH for additional information
+       regarding further information
+
+         http://www.tillerstack.com
+
+       Unless required by applicable law or agreed to in writing,
+       software is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+       CONDITIONS OF ANY KIND, either express or implied.
+
+ */
+
+package com.tillerstack.cordova.plugin.background;
+
+import org.apache.cordova.CordovaWebView;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Debug-only generator of synthetic environment events for reproducing broadcast storms, long
+ * series of screen-off alarms and WebView pauses on demand. It is only started by the Background
+ * plugin in debuggable builds.
+ *
+ * Events are pushed through the very same entry points Android uses: the plugin's receivers for
+ * screen, dream and alarm events, and CordovaWebView.handlePause()/handleResume() for lifecycle
+ * events, which also pauses the WebView's JavaScript timers like a real activity pause does.
+ *
+ * Every resulting plugin result carries a sequence number, unique across all runs, which the
+ * JavaScript side acknowledges once the app's callback has run. Latency and loss are computed from
+ * these acknowledgements, so a stalled bridge, a paused WebView or a slow JavaScript consumer show
+ * up in the report. An event counts as lost once it is unacknowledged for longer than the ack timeout.
+ *
+ * Events are scheduled on an absolute timeline on a dedicated HandlerThread or on any given Looper
+ * (e.g. a Robolectric looper driven by a fake clock). The post-GC heap samples are taken on a
+ * separate HandlerThread, so they do not stall the schedule. All bookkeeping uses fixed-size
+ * arrays, so a soak run of several hours does not grow the heap by itself.
+ */
+public class SyntheticLoadGenerator
+{
+    // Constant value identifying the pattern injecting single events in fixed intervals
+    public static final String PATTERN_CONSTANT = "constant";
+    // Constant value identifying the pattern injecting back-to-back bursts of events
+    public static final String PATTERN_BURST = "burst";
+    // Constant value identifying the pattern injecting single events in exponentially distributed intervals
+    public static final String PATTERN_RANDOM = "random";
+
+    // Constant value listing every state the generator is able to inject
+    static final String[] SYNTHETIC_EVENTS = {
+        Background.STATE_DEVICE_DREAMING_STARTED,
+        Background.STATE_DEVICE_DREAMING_STOPPED,
+        Background.STATE_DEVICE_SCREEN_OFF,
+        Background.STATE_DEVICE_SCREEN_ON,
+        Background.STATE_ACTIVITY_PAUSED,
+        Background.STATE_ACTIVITY_RESUMED,
+        Background.STATE_ALARM_WAKEUP_ONCE
+    };
+
+    // lowest accepted rate in events per second, slower rates would push the due points beyond the uptime range
+    static final double MIN_RATE = 0.001;
+    // default and maximum number of most recent events kept for matching acknowledgements
+    static final int DEFAULT_IN_FLIGHT_CAPACITY = 65536;
+    private static final int MAX_IN_FLIGHT_CAPACITY = 1 << 22;
+    // default time after which an unacknowledged event counts as lost
+    private static final double DEFAULT_ACK_TIMEOUT_SECONDS = 30;
+    // maximum number of overdue events injected in one tick before the looper is given back
+    private static final int MAX_EVENTS_PER_TICK = 100;
+
+    // states of a slot in the in-flight ring
+    private static final byte SLOT_FREE = 0;
+    private static final byte SLOT_DISPATCHING = 1;
+    private static final byte SLOT_DISPATCHED = 2;
+
+    // next sequence number, shared by all runs so acknowledgements of a previous run never match the current one
+    private static final AtomicLong NEXT_SEQUENCE = new AtomicLong();
+
+    // local reference to the calling plugin object
+    protected Background watcher;
+
+    // configured events per second, averaged over bursts and random intervals
+    private final double rate;
+    // configured traffic pattern, one of the PATTERN_* values
+    private final String pattern;
+    // configured number of events per burst, only used by PATTERN_BURST
+    private final int burstSize;
+    // configured run time in milliseconds, 0 runs until stopped
+    private final long durationMs;
+    // configured maximum number of injected events, 0 runs until stopped
+    private final long maxEvents;
+    // configured interval between two post-GC heap samples in milliseconds, 0 samples on start and stop only
+    private final long heapSampleMs;
+    // configured number of most recent events kept for matching acknowledgements
+    private final int inFlightCapacity;
+    // configured time after which an unacknowledged event counts as lost
+    private final long ackTimeoutNs;
+    // configured switch whether lifecycle events pause and resume the WebView itself
+    private final boolean pauseWebView;
+    // configured events, injected in round-robin order
+    private final String[] events;
+    // source of the random intervals, seedable for reproducible runs
+    private final Random random;
+    // milliseconds between two due points (single events or bursts) of the constant and burst patterns
+    private final double periodMs;
+
+    // activity and application context handed to the receivers and used for UI thread dispatching
+    private final Activity activity;
+    private final Context context;
+    // receivers used whenever the plugin has not registered its own ones (yet)
+    private final Background.BackgroundBroadcastReceiver detachedBackgroundReceiver;
+    private final Background.AlarmBroadcastReceiver detachedAlarmReceiver;
+
+    // threads owned by the generator, null if it was started on foreign Loopers
+    private HandlerThread thread;
+    private HandlerThread heapThread;
+    private Handler handler;
+    private Handler heapHandler;
+    private volatile boolean running = false;
+    private volatile boolean stopped = false;
+    // set while the WebView is paused by a synthetic ACTIVITY_PAUSED, only accessed on the UI thread
+    private boolean webViewPaused = false;
+    // set while a heap sample is taken, events injected meanwhile are counted separately
+    private volatile boolean heapSampling = false;
+
+    // uptime of the start, all due points are relative to it
+    private long startedAt = 0;
+    private long stoppedAt = 0;
+    // number of due points passed and the offset of the next one, kept as double to carry sub-millisecond remainders
+    private long dueIndex = 0;
+    private double nextDueMs = 0;
+
+    // sequence number of the synthetic event currently dispatched by the calling thread
+    private final ThreadLocal<Attribution> attribution = new ThreadLocal<Attribution>()
+    {
+        @Override
+        protected Attribution initialValue()
+        {
+            return new Attribution();
+        }
+    };
+
+    // ring of the most recent events, indexed by sequence number modulo inFlightCapacity
+    private final long[] inFlightSequence;
+    private final long[] inFlightSince;
+    private final byte[] inFlightState;
+
+    private int nextEvent = 0;
+    private long injectedCount = 0;
+    private long dispatchedCount = 0;
+    private long acknowledgedCount = 0;
+    private long lateAcknowledgedCount = 0;
+    private long undeliveredCount = 0;
+    private long expiredCount = 0;
+    private long overflowedCount = 0;
+    private long cancelledCount = 0;
+    private long injectedDuringHeapSampleCount = 0;
+    private boolean failureLogged = false;
+
+    // time from injection until JavaScript acknowledged the event
+    private final LatencyHistogram latency = new LatencyHistogram();
+    // time from injection until the result was handed to Cordova
+    private final LatencyHistogram dispatchLatency = new LatencyHistogram();
+
+    private long heapBaseline = -1;
+    private long heapLatest = -1;
+    private long heapMax = -1;
+    private long heapSamples = 0;
+
+    /*
+     * Constructor
+     *
+     * Recognised configuration keys, all optional:
+     * - rate:              events per second (default 10)
+     * - pattern:           "constant", "burst" or "random" (default "constant")
+     * - burstSize:         events per burst (default 10)
+     * - durationSeconds:   run time, 0 runs until stopped (default 0)
+     * - maxEvents:         number of events, 0 runs until stopped (default 0)
+     * - heapSampleSeconds: interval of post-GC heap samples, 0 samples on start and stop only (default 10)
+     * - ackTimeoutSeconds: time after which an unacknowledged event counts as lost (default 30)
+     * - inFlightCapacity:  number of most recent events tracked for acknowledgements (default 65536),
+     *                      older events still unacknowledged within the timeout count as overflowed
+     * - pauseWebView:      let lifecycle events pause and resume the WebView (default true)
+     * - events:            array of state names to inject (default all SYNTHETIC_EVENTS)
+     * - seed:              seed for the random pattern
+     *
+     * Throws an IllegalArgumentException for any invalid value.
+     */
+    public SyntheticLoadGenerator(Background watcher, JSONObject config)
+    {
+        super();
+        Log.i(Background.LOG_TAG, "Constructor 'SyntheticLoadGenerator()' called @" + watcher.hash);
+        // saving reference to calling plugin object for reuse
+        this.watcher = watcher;
+
+        this.rate = optNumber(config, "rate", 10);
+        if (Double.isNaN(this.rate) || Double.isInfinite(this.rate) || this.rate < MIN_RATE)
+        {
+            throw new IllegalArgumentException("rate must be a finite number of at least " + MIN_RATE);
+        }
+
+        Object configuredPattern = config.opt("pattern");
+        if (configuredPattern == null || configuredPattern == JSONObject.NULL)
+        {
+            configuredPattern = PATTERN_CONSTANT;
+        }
+        if (!PATTERN_CONSTANT.equals(configuredPattern) && !PATTERN_BURST.equals(configuredPattern) && !PATTERN_RANDOM.equals(configuredPattern))
+        {
+            throw new IllegalArgumentException("unknown pattern: " + configuredPattern);
+        }
+        this.pattern = (String) configuredPattern;
+
+        this.burstSize = (int) optCount(config, "burstSize", 10, Integer.MAX_VALUE);
+        if (this.burstSize < 1)
+        {
+            throw new IllegalArgumentException("burstSize must be at least 1");
+        }
+        this.durationMs = 1000L * optCount(config, "durationSeconds", 0, Long.MAX_VALUE / 1000);
+        this.maxEvents = optCount(config, "maxEvents", 0, Long.MAX_VALUE);
+        this.heapSampleMs = 1000L * optCount(config, "heapSampleSeconds", 10, Long.MAX_VALUE / 1000);
+
+        this.inFlightCapacity = (int) optCount(config, "inFlightCapacity", DEFAULT_IN_FLIGHT_CAPACITY, MAX_IN_FLIGHT_CAPACITY);
+        if (this.inFlightCapacity < 1)
+        {
+            throw new IllegalArgumentException("inFlightCapacity must be at least 1");
+        }
+        this.inFlightSequence = new long[this.inFlightCapacity];
+        this.inFlightSince = new long[this.inFlightCapacity];
+        this.inFlightState = new byte[this.inFlightCapacity];
+
+        double ackTimeoutSeconds = optNumber(config, "ackTimeoutSeconds", DEFAULT_ACK_TIMEOUT_SECONDS);
+        if (!(ackTimeoutSeconds > 0) || ackTimeoutSeconds > Long.MAX_VALUE / 1e9)
+        {
+            throw new IllegalArgumentException("ackTimeoutSeconds must be a number greater than 0");
+        }
+        this.ackTimeoutNs = (long) (ackTimeoutSeconds * 1e9);
+
+        Object configuredPauseWebView = config.opt("pauseWebView");
+        if (configuredPauseWebView == null || configuredPauseWebView == JSONObject.NULL)
+        {
+            this.pauseWebView = true;
+        }
+        else if (configuredPauseWebView instanceof Boolean)
+        {
+            this.pauseWebView = (Boolean) configuredPauseWebView;
+        }
+        else
+        {
+            throw new IllegalArgumentException("pauseWebView must be a boolean");
+        }
+
+        Object configuredSeed = config.opt("seed");
+        if (configuredSeed == null || configuredSeed == JSONObject.NULL)
+        {
+            this.random = new Random();
+        }
+        else if (configuredSeed instanceof Number)
+        {
+            this.random = new Random(((Number) configuredSeed).longValue());
+        }
+        else
+        {
+            throw new IllegalArgumentException("seed must be a number");
+        }
+
+        Object configuredEvents = config.opt("events");
+        if (configuredEvents == null || configuredEvents == JSONObject.NULL)
+        {
+            this.events = SYNTHETIC_EVENTS;
+        }
+        else if (configuredEvents instanceof JSONArray && ((JSONArray) configuredEvents).length() > 0)
+        {
+            JSONArray eventArray = (JSONArray) configuredEvents;
+            this.events = new String[eventArray.length()];
+            for (int i = 0; i < eventArray.length(); i++)
+            {
+                Object event = eventArray.opt(i);
+                if (!(event instanceof String) || !isSyntheticEvent((String) event))
+                {
+                    throw new IllegalArgumentException("unknown event: " + event);
+                }
+                this.events[i] = (String) event;
+            }
+        }
+        else
+        {
+            throw new IllegalArgumentException("events must be a non-empty array of state names");
+        }
+
+        this.periodMs = PATTERN_BURST.equals(this.pattern) ? 1000.0 * this.burstSize / this.rate : 1000.0 / this.rate;
+
+        this.activity = watcher.cordova.getActivity();
+        this.context = this.activity.getApplicationContext();
+        this.detachedBackgroundReceiver = watcher.new BackgroundBroadcastReceiver(watcher);
+        this.detachedAlarmReceiver = watcher.new AlarmBroadcastReceiver(watcher);
+    }
+
+    /*
+     * Starts injecting events on a dedicated HandlerThread and sampling the heap on another one
+     */
+    public void start()
+    {
+        this.thread = new HandlerThread("BackgroundLoadGenerator");
+        this.thread.start();
+        this.heapThread = new HandlerThread("BackgroundLoadGeneratorHeap");
+        this.heapThread.start();
+        start(this.thread.getLooper(), this.heapThread.getLooper());
+    }
+
+    /*
+     * Starts injecting events and sampling the heap on the given Looper, which allows driving the
+     * generator from a test clock. Heap samples then delay the events due while they are taken.
+     */
+    public void start(Looper looper)
+    {
+        start(looper, looper);
+    }
+
+    /*
+     * Starts injecting events on the given Looper and sampling the heap on the other one
+     */
+    public synchronized void start(Looper looper, Looper heapLooper)
+    {
+        Log.i(Background.LOG_TAG, "Method 'SyntheticLoadGenerator.start()' called @" + this.watcher.hash
+                + ": pattern=" + this.pattern + ", rate=" + this.rate + ", events=" + this.events.length);
+
+        this.handler = new Handler(looper);
+        this.heapHandler = new Handler(heapLooper);
+        this.running = true;
+        this.startedAt = SystemClock.uptimeMillis();
+        this.dueIndex = 0;
+        this.nextDueMs = 0;
+        this.heapHandler.post(this.heapSampler);
+        this.handler.postAtTime(this.tick, this.startedAt);
+    }
+
+    /*
+     * Stops injecting events, drops lifecycle events still queued on the UI thread and resumes the
+     * WebView if it was left paused by a synthetic event. The collected statistics stay available
+     * via getReport() and late acknowledgements are still counted.
+     */
+    public void stop()
+    {
+        if (!halt())
+        {
+            return;
+        }
+
+        // checked on the UI thread, behind any queued lifecycle event, which is dropped by now
+        final CordovaWebView webView = this.watcher.webView;
+        if (webView != null)
+        {
+            this.activity.runOnUiThread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    if (webViewPaused)
+                    {
+                        webViewPaused = false;
+                        webView.handleResume(false);
+                    }
+                }
+            });
+        }
+
+        // the final sample, the run is over so it cannot stall the schedule anymore
+        if (this.startedAt > 0)
+        {
+            sampleHeap();
+        }
+
+        Log.i(Background.LOG_TAG, "Method 'SyntheticLoadGenerator.stop()' called @" + this.watcher.hash
+                + ": injected=" + this.injectedCount + ", acknowledged=" + this.acknowledgedCount
+                + ", lost=" + (this.undeliveredCount + this.expiredCount));
+    }
+
+    /*
+     * Marks the generator as stopped and cancels all scheduled work, returns false if it was stopped already
+     */
+    private synchronized boolean halt()
+    {
+        if (this.stopped)
+        {
+            return false;
+        }
+        this.stopped = true;
+
+        if (this.running)
+        {
+            this.running = false;
+            this.stoppedAt = SystemClock.uptimeMillis();
+
+            this.handler.removeCallbacks(this.tick);
+            this.heapHandler.removeCallbacks(this.heapSampler);
+            if (this.thread != null)
+            {
+                this.thread.quit();
+                this.thread = null;
+            }
+            if (this.heapThread != null)
+            {
+                this.heapThread.quit();
+                this.heapThread = null;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Whether events are scheduled on a Looper
+     */
+    public boolean isRunning()
+    {
+        return this.running;
+    }
+
+    /*
+     * Whether the generator may still inject events, i.e. it has not been stopped yet.
+     * The plugin skips its per-event logging meanwhile.
+     */
+    public boolean isActive()
+    {
+        return !this.stopped;
+    }
+
+    // scheduled task injecting all events due by now and rescheduling itself for the next due point
+    private final Runnable tick = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            if (!running)
+            {
+                return;
+            }
+            long now = SystemClock.uptimeMillis();
+            if (durationMs > 0 && now - startedAt >= durationMs)
+            {
+                stop();
+                return;
+            }
+
+            int injected = 0;
+            while (running && nextDueMs <= now - startedAt && injected < MAX_EVENTS_PER_TICK)
+            {
+                int count = PATTERN_BURST.equals(pattern) ? burstSize : 1;
+                for (int i = 0; i < count; i++)
+                {
+                    if (!injectNext())
+                    {
+                        stop();
+                        return;
+                    }
+                }
+                injected += count;
+                advanceTimeline();
+            }
+
+            if (running)
+            {
+                // rounded up so no event fires early, overdue due points are posted for immediate
+                // execution, so the looper stays responsive
+                handler.postAtTime(this, startedAt + (long) Math.ceil(nextDueMs));
+            }
+        }
+    };
+
+    // scheduled task taking a post-GC heap sample and rescheduling itself
+    private final Runnable heapSampler = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            if (!running)
+            {
+                return;
+            }
+            sampleHeap();
+            if (heapSampleMs > 0)
+            {
+                heapHandler.postAtTime(this, SystemClock.uptimeMillis() + heapSampleMs);
+            }
+        }
+    };
+
+    /*
+     * Injects the next configured event and returns whether further events may be injected
+     * (false once stopped or maxEvents is reached). Public so soak tests can drive the generator
+     * without any Looper. Lifecycle events are dispatched on the UI thread.
+     */
+    public synchronized boolean injectNext()
+    {
+        if (this.stopped || (this.maxEvents > 0 && this.injectedCount >= this.maxEvents))
+        {
+            return false;
+        }
+
+        final String event = this.events[this.nextEvent];
+        this.nextEvent = (this.nextEvent + 1) % this.events.length;
+
+        this.injectedCount++;
+        if (this.heapSampling)
+        {
+            this.injectedDuringHeapSampleCount++;
+        }
+
+        final long sequence = NEXT_SEQUENCE.getAndIncrement();
+        long now = System.nanoTime();
+        int slot = slotOf(sequence);
+        // the event previously held by this slot was never acknowledged
+        if (this.inFlightState[slot] != SLOT_FREE)
+        {
+            if (now - this.inFlightSince[slot] > this.ackTimeoutNs)
+            {
+                this.expiredCount++;
+            }
+            else
+            {
+                this.overflowedCount++;
+            }
+        }
+        this.inFlightSequence[slot] = sequence;
+        this.inFlightSince[slot] = now;
+        this.inFlightState[slot] = SLOT_DISPATCHING;
+
+        if (isLifecycleEvent(event) && this.pauseWebView && this.watcher.webView != null)
+        {
+            this.activity.runOnUiThread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    dispatch(event, sequence);
+                }
+            });
+        }
+        else
+        {
+            dispatch(event, sequence);
+        }
+
+        return this.maxEvents <= 0 || this.injectedCount < this.maxEvents;
+    }
+
+    /*
+     * Returns the sequence number of the synthetic event the calling thread is currently dispatching
+     * and which has not led to a plugin result yet, -1 otherwise
+     */
+    long getAttributedSequence()
+    {
+        Attribution current = this.attribution.get();
+        return current.published ? -1 : current.sequence;
+    }
+
+    /*
+     * Called from sendUpdate() once the plugin result of a synthetic event was handed to Cordova,
+     * or could not be handed over because no callback is registered
+     */
+    synchronized void onUpdatePublished(long sequence, boolean delivered)
+    {
+        Attribution current = this.attribution.get();
+        if (current.sequence != sequence || current.published)
+        {
+            return;
+        }
+        current.published = true;
+
+        int slot = slotOf(sequence);
+        if (this.inFlightSequence[slot] != sequence || this.inFlightState[slot] != SLOT_DISPATCHING)
+        {
+            return;
+        }
+
+        if (!delivered)
+        {
+            this.inFlightState[slot] = SLOT_FREE;
+            this.undeliveredCount++;
+            return;
+        }
+
+        this.inFlightState[slot] = SLOT_DISPATCHED;
+        this.dispatchedCount++;
+        this.dispatchLatency.record(System.nanoTime() - this.inFlightSince[slot]);
+    }
+
+    /*
+     * Called for every sequence number JavaScript acknowledged after its callback handled the result
+     */
+    synchronized void onAcknowledged(long sequence)
+    {
+        int slot = slotOf(Math.max(sequence, 0));
+        if (sequence < 0 || this.inFlightSequence[slot] != sequence || this.inFlightState[slot] != SLOT_DISPATCHED)
+        {
+            // already counted as lost or overflowed, or handed out by another run
+            this.lateAcknowledgedCount++;
+            return;
+        }
+
+        long latencyNs = System.nanoTime() - this.inFlightSince[slot];
+        this.inFlightState[slot] = SLOT_FREE;
+        if (latencyNs > this.ackTimeoutNs)
+        {
+            this.expiredCount++;
+            this.lateAcknowledgedCount++;
+            return;
+        }
+        this.acknowledgedCount++;
+        this.latency.record(latencyNs);
+    }
+
+    /*
+     * Collects the statistics of the running or finished generator as a JSON object. Events
+     * unacknowledged for longer than the ack timeout are counted as expired on the way.
+     */
+    public JSONObject getReport() throws JSONException
+    {
+        synchronized (this)
+        {
+            long now = System.nanoTime();
+            long pending = 0;
+            for (int slot = 0; slot < this.inFlightCapacity; slot++)
+            {
+                if (this.inFlightState[slot] == SLOT_FREE)
+                {
+                    continue;
+                }
+                if (now - this.inFlightSince[slot] > this.ackTimeoutNs)
+                {
+                    this.inFlightState[slot] = SLOT_FREE;
+                    this.expiredCount++;
+                }
+                else
+                {
+                    pending++;
+                }
+            }
+
+            long end = this.running ? SystemClock.uptimeMillis() : this.stoppedAt;
+            long elapsedMs = this.startedAt > 0 ? Math.max(0, end - this.startedAt) : 0;
+
+            JSONObject report = new JSONObject();
+            report.put("running", this.running);
+            report.put("pattern", this.pattern);
+            report.put("rate", this.rate);
+            report.put("elapsedMs", elapsedMs);
+            report.put("injected", this.injectedCount);
+            report.put("dispatched", this.dispatchedCount);
+            report.put("acknowledged", this.acknowledgedCount);
+            report.put("lateAcknowledged", this.lateAcknowledgedCount);
+            report.put("undelivered", this.undeliveredCount);
+            report.put("expired", this.expiredCount);
+            report.put("lost", this.undeliveredCount + this.expiredCount);
+            report.put("overflowed", this.overflowedCount);
+            report.put("cancelled", this.cancelledCount);
+            report.put("pending", pending);
+            report.put("injectedDuringHeapSample", this.injectedDuringHeapSampleCount);
+            report.put("throughputPerSecond", elapsedMs > 0 ? this.acknowledgedCount * 1000.0 / elapsedMs : 0);
+            this.latency.put(report, "latency");
+            this.dispatchLatency.put(report, "dispatchLatency");
+            report.put("heapBaselineBytes", this.heapBaseline);
+            report.put("heapLatestBytes", this.heapLatest);
+            report.put("heapMaxBytes", this.heapMax);
+            report.put("heapGrowthBytes", this.heapLatest - this.heapBaseline);
+            report.put("heapSamples", this.heapSamples);
+            return report;
+        }
+    }
+
+    /*
+     * Delivers a single event on the calling thread while attributing the resulting plugin result to it
+     */
+    private synchronized void dispatch(String event, long sequence)
+    {
+        int slot = slotOf(sequence);
+        // a lifecycle event still queued on the UI thread when the generator was stopped
+        if (this.stopped)
+        {
+            if (this.inFlightSequence[slot] == sequence && this.inFlightState[slot] == SLOT_DISPATCHING)
+            {
+                this.inFlightState[slot] = SLOT_FREE;
+                this.cancelledCount++;
+            }
+            return;
+        }
+
+        Attribution current = this.attribution.get();
+        current.sequence = sequence;
+        current.published = false;
+        try
+        {
+            deliver(event);
+        }
+        catch (Exception ex)
+        {
+            // a broken dispatch path would fail on every event, so it is only logged once
+            if (!this.failureLogged)
+            {
+                this.failureLogged = true;
+                Log.w(Background.LOG_TAG, "Synthetic event " + event + " failed: " + ex.getMessage(), ex);
+            }
+        }
+        finally
+        {
+            current.sequence = -1;
+        }
+
+        // the event never made it to sendUpdate()
+        if (!current.published && this.inFlightSequence[slot] == sequence && this.inFlightState[slot] == SLOT_DISPATCHING)
+        {
+            this.inFlightState[slot] = SLOT_FREE;
+            this.undeliveredCount++;
+        }
+    }
+
+    /*
+     * Forwards the given state through the same entry point Android would use for it
+     */
+    private void deliver(String event)
+    {
+        CordovaWebView webView = this.pauseWebView ? this.watcher.webView : null;
+
+        if (Background.STATE_ACTIVITY_PAUSED.equals(event))
+        {
+            if (webView != null)
+            {
+                // pauses the JavaScript timers and informs all plugins, including the watcher
+                webView.handlePause(false);
+                this.webViewPaused = true;
+            }
+            else
+            {
+                this.watcher.onPause(false);
+            }
+        }
+        else if (Background.STATE_ACTIVITY_RESUMED.equals(event))
+        {
+            if (webView != null)
+            {
+                webView.handleResume(false);
+                this.webViewPaused = false;
+            }
+            else
+            {
+                this.watcher.onResume(false);
+            }
+        }
+        else if (Background.STATE_ALARM_WAKEUP_ONCE.equals(event))
+        {
+            Background.AlarmBroadcastReceiver receiver = this.watcher.alarmReceiver;
+            if (receiver == null)
+            {
+                receiver = this.detachedAlarmReceiver;
+            }
+            receiver.onReceive(this.context, new Intent(Background.INTENT_ALARM_WAKEUP_ONCE));
+        }
+        else
+        {
+            Background.BackgroundBroadcastReceiver receiver = this.watcher.backgroundReceiver;
+            if (receiver == null)
+            {
+                receiver = this.detachedBackgroundReceiver;
+            }
+            receiver.onReceive(this.context, new Intent(intentActionFor(event)));
+        }
+    }
+
+    /*
+     * Moves the timeline to the next due point according to the configured pattern. Constant and burst
+     * due points are computed from their index, so neither rounding nor processing time accumulates.
+     */
+    private void advanceTimeline()
+    {
+        this.dueIndex++;
+        if (PATTERN_RANDOM.equals(this.pattern))
+        {
+            this.nextDueMs += -Math.log(1.0 - this.random.nextDouble()) * 1000.0 / this.rate;
+        }
+        else
+        {
+            this.nextDueMs = this.dueIndex * this.periodMs;
+        }
+    }
+
+    /*
+     * Samples the used heap right after a garbage collection, so consecutive samples are comparable
+     * and a steady growth over a soak run points to a leak rather than to the GC sawtooth
+     */
+    private void sampleHeap()
+    {
+        this.heapSampling = true;
+        Runtime runtime = Runtime.getRuntime();
+        runtime.gc();
+        runtime.runFinalization();
+        runtime.gc();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        this.heapSampling = false;
+
+        synchronized (this)
+        {
+            if (this.heapBaseline < 0)
+            {
+                this.heapBaseline = used;
+            }
+            this.heapLatest = used;
+            this.heapMax = Math.max(this.heapMax, used);
+            this.heapSamples++;
+        }
+    }
+
+    private int slotOf(long sequence)
+    {
+        return (int) (sequence % this.inFlightCapacity);
+    }
+
+    /*
+     * Maps a device state to the system Intent.Action the BackgroundBroadcastReceiver listens to
+     */
+    private static String intentActionFor(String event)
+    {
+        if (Background.STATE_DEVICE_DREAMING_STARTED.equals(event))
+        {
+            return Intent.ACTION_DREAMING_STARTED;
+        }
+        else if (Background.STATE_DEVICE_DREAMING_STOPPED.equals(event))
+        {
+            return Intent.ACTION_DREAMING_STOPPED;
+        }
+        else if (Background.STATE_DEVICE_SCREEN_OFF.equals(event))
+        {
+            return Intent.ACTION_SCREEN_OFF;
+        }
+        return Intent.ACTION_SCREEN_ON;
+    }
+
+    private static boolean isLifecycleEvent(String event)
+    {
+        return Background.STATE_ACTIVITY_PAUSED.equals(event) || Background.STATE_ACTIVITY_RESUMED.equals(event);
+    }
+
+    private static boolean isSyntheticEvent(String event)
+    {
+        for (String known : SYNTHETIC_EVENTS)
+        {
+            if (known.equals(event))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Reads an optional numeric configuration value, rejecting any non-numeric one
+     */
+    private static double optNumber(JSONObject config, String key, double fallback)
+    {
+        Object value = config.opt(key);
+        if (value == null || value == JSONObject.NULL)
+        {
+            return fallback;
+        }
+        if (!(value instanceof Number))
+        {
+            throw new IllegalArgumentException(key + " must be a number");
+        }
+        return ((Number) value).doubleValue();
+    }
+
+    /*
+     * Reads an optional non-negative whole configuration value not exceeding the given maximum
+     */
+    private static long optCount(JSONObject config, String key, long fallback, long max)
+    {
+        double value = optNumber(config, key, fallback);
+        if (value < 0 || value > max || value != Math.floor(value))
+        {
+            throw new IllegalArgumentException(key + " must be a whole number between 0 and " + max);
+        }
+        return (long) value;
+    }
+
+    /*
+     * Mutable per-thread marker of the synthetic event being dispatched
+     */
+    private static class Attribution
+    {
+        long sequence = -1;
+        boolean published = false;
+    }
+
+    /*
+     * Fixed-size latency statistics, bucket i holds latencies of [2^i, 2^(i+1)) microseconds
+     */
+    private static class LatencyHistogram
+    {
+        private static final int BUCKETS = 40;
+
+        private final long[] buckets = new long[BUCKETS];
+        private long count = 0;
+        private long sumNs = 0;
+        private long minNs = Long.MAX_VALUE;
+        private long maxNs = 0;
+
+        void record(long latencyNs)
+        {
+            this.count++;
+            this.sumNs += latencyNs;
+            this.minNs = Math.min(this.minNs, latencyNs);
+            this.maxNs = Math.max(this.maxNs, latencyNs);
+
+            long latencyUs = latencyNs / 1000;
+            int bucket = latencyUs <= 0 ? 0 : 63 - Long.numberOfLeadingZeros(latencyUs);
+            this.buckets[Math.min(bucket, BUCKETS - 1)]++;
+        }
+
+        /*
+         * Adds min, average, median, 99th percentile and max in milliseconds with the given key prefix
+         */
+        void put(JSONObject report, String prefix) throws JSONException
+        {
+            report.put(prefix + "MinMs", this.count > 0 ? this.minNs / 1e6 : 0);
+            report.put(prefix + "AvgMs", this.count > 0 ? this.sumNs / 1e6 / this.count : 0);
+            report.put(prefix + "P50Ms", percentileMs(0.50));
+            report.put(prefix + "P99Ms", percentileMs(0.99));
+            report.put(prefix + "MaxMs", this.maxNs / 1e6);
+        }
+
+        /*
+         * Approximates the given percentile by the upper bound of the matching bucket
+         */
+        private double percentileMs(double percentile)
+        {
+            if (this.count == 0)
+            {
+                return 0;
+            }
+            long threshold = (long) Math.ceil(percentile * this.count);
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS; i++)
+            {
+                cumulative += this.buckets[i];
+                if (cumulative >= threshold)
+                {
+                    return Math.min((1L << (i + 1)) / 1000.0, this.maxNs / 1e6);
+                }
+            }
+            return this.maxNs / 1e6;
+        }
+    }
+}
@@ -0,0 +1,519 @@
+package com.tillerstack.cordova.plugin.background;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.Activity;
+import android.os.HandlerThread;
+import android.os.Looper;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaInterface;
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLog;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class SyntheticLoadGeneratorTest
+{
+    private Background plugin;
+    private RecordingCallbackContext callback;
+
+    @Before
+    public void setUp() throws JSONException
+    {
+        Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        CordovaInterface cordova = mock(CordovaInterface.class);
+        when(cordova.getActivity()).thenReturn(activity);
+
+        plugin = new Background();
+        plugin.cordova = cordova;
+        callback = new RecordingCallbackContext();
+        plugin.execute("registerDevicePowerChanges", new JSONArray(), callback);
+    }
+
+    @After
+    public void tearDown()
+    {
+        if (plugin.loadGenerator != null)
+        {
+            plugin.loadGenerator.stop();
+        }
+    }
+
+    @Test
+    public void injectNextTagsResultsAndCountsAcknowledgements() throws JSONException
+    {
+        SyntheticLoadGenerator generator = install("{events: ['DEVICE_SCREEN_OFF', 'ALARM_WAKEUP_ONCE']}");
+
+        for (int i = 0; i < 10; i++)
+        {
+            assertTrue(generator.injectNext());
+        }
+
+        assertEquals(10, callback.sequences.size());
+        long first = callback.sequences.get(0);
+        for (int i = 0; i < 10; i++)
+        {
+            assertEquals(first + i, (long) callback.sequences.get(i));
+        }
+        assertEquals("DEVICE_SCREEN_OFF", callback.states.get(0));
+        assertEquals("ALARM_WAKEUP_ONCE", callback.states.get(1));
+
+        acknowledge(first, first + 1, first + 2, first + 3, first + 4, first + 5);
+
+        JSONObject report = generator.getReport();
+        assertEquals(10, report.getLong("injected"));
+        assertEquals(10, report.getLong("dispatched"));
+        assertEquals(6, report.getLong("acknowledged"));
+        assertEquals(4, report.getLong("pending"));
+        assertEquals(0, report.getLong("lost"));
+        assertTrue(report.getDouble("latencyMaxMs") >= report.getDouble("latencyMinMs"));
+    }
+
+    @Test
+    public void eventsWithoutRegisteredCallbackAreLost() throws JSONException
+    {
+        plugin.execute("unregisterDevicePowerChanges", new JSONArray(), callback);
+        SyntheticLoadGenerator generator = install("{events: ['DEVICE_SCREEN_ON']}");
+
+        for (int i = 0; i < 5; i++)
+        {
+            generator.injectNext();
+        }
+
+        JSONObject report = generator.getReport();
+        assertEquals(5, report.getLong("injected"));
+        assertEquals(0, report.getLong("dispatched"));
+        assertEquals(5, report.getLong("undelivered"));
+        assertEquals(5, report.getLong("lost"));
+        assertEquals(0, report.getLong("pending"));
+    }
+
+    @Test
+    public void unacknowledgedEventsExpireAfterTheAckTimeout() throws Exception
+    {
+        SyntheticLoadGenerator generator = install("{ackTimeoutSeconds: 0.05, events: ['DEVICE_DREAMING_STARTED']}");
+
+        for (int i = 0; i < 3; i++)
+        {
+            generator.injectNext();
+        }
+        long first = callback.sequences.get(0);
+        acknowledge(first);
+
+        Thread.sleep(100);
+        acknowledge(first + 1);
+
+        JSONObject report = generator.getReport();
+        assertEquals(1, report.getLong("acknowledged"));
+        assertEquals(1, report.getLong("lateAcknowledged"));
+        assertEquals(2, report.getLong("expired"));
+        assertEquals(2, report.getLong("lost"));
+        assertEquals(0, report.getLong("pending"));
+
+        acknowledge(first + 2);
+        assertEquals(2, generator.getReport().getLong("lateAcknowledged"));
+        assertEquals(2, generator.getReport().getLong("expired"));
+    }
+
+    @Test
+    public void eventsBeyondTheInFlightCapacityOverflowWithoutCountingAsLost() throws JSONException
+    {
+        SyntheticLoadGenerator generator = install("{inFlightCapacity: 16, events: ['DEVICE_DREAMING_STARTED']}");
+
+        for (int i = 0; i < 16 + 5; i++)
+        {
+            generator.injectNext();
+        }
+        acknowledge(callback.sequences.get(0));
+
+        JSONObject report = generator.getReport();
+        assertEquals(5, report.getLong("overflowed"));
+        assertEquals(0, report.getLong("expired"));
+        assertEquals(0, report.getLong("lost"));
+        assertEquals(1, report.getLong("lateAcknowledged"));
+        assertEquals(16, report.getLong("pending"));
+    }
+
+    @Test
+    public void acknowledgementsOfAPreviousRunAreNotCounted() throws JSONException
+    {
+        SyntheticLoadGenerator previous = install("{events: ['DEVICE_SCREEN_ON']}");
+        for (int i = 0; i < 5; i++)
+        {
+            previous.injectNext();
+        }
+        previous.stop();
+        List<Long> previousSequences = new ArrayList<>(callback.sequences);
+        callback.sequences.clear();
+
+        SyntheticLoadGenerator generator = install("{events: ['DEVICE_SCREEN_ON']}");
+        for (int i = 0; i < 5; i++)
+        {
+            generator.injectNext();
+        }
+        for (long sequence : previousSequences)
+        {
+            acknowledge(sequence);
+        }
+
+        JSONObject report = generator.getReport();
+        assertEquals(0, report.getLong("acknowledged"));
+        assertEquals(5, report.getLong("lateAcknowledged"));
+        assertEquals(5, report.getLong("pending"));
+
+        acknowledgeReceived();
+        assertEquals(5, generator.getReport().getLong("acknowledged"));
+    }
+
+    @Test
+    public void perEventLoggingIsSkippedWhileActive() throws JSONException
+    {
+        SyntheticLoadGenerator generator = install("{}");
+        ShadowLog.clear();
+
+        for (int i = 0; i < 1000; i++)
+        {
+            generator.injectNext();
+        }
+        assertTrue(ShadowLog.getLogs().size() < 10);
+
+        generator.stop();
+        ShadowLog.clear();
+        acknowledgeReceived();
+        assertTrue(ShadowLog.getLogs().isEmpty());
+
+        plugin.onPause(false);
+        assertFalse(ShadowLog.getLogs().isEmpty());
+    }
+
+    @Test
+    public void constantPatternFollowsAbsoluteTimeline() throws JSONException
+    {
+        // a whole-millisecond delay would turn 600 events per second into 1000
+        SyntheticLoadGenerator generator = install("{rate: 600, events: ['DEVICE_SCREEN_ON']}");
+        generator.start(Looper.getMainLooper());
+
+        idleFor(10000);
+
+        long injected = generator.getReport().getLong("injected");
+        assertTrue("injected " + injected, injected >= 6000 && injected <= 6001);
+    }
+
+    @Test
+    public void ratesAboveOneEventPerMillisecondAreHonored() throws JSONException
+    {
+        SyntheticLoadGenerator generator = install("{rate: 5000, events: ['DEVICE_SCREEN_ON']}");
+        generator.start(Looper.getMainLooper());
+
+        idleFor(2000);
+
+        long injected = generator.getReport().getLong("injected");
+        assertTrue("injected " + injected, injected >= 10000 && injected <= 10001);
+    }
+
+    @Test
+    public void burstPatternInjectsBackToBackBursts() throws JSONException
+    {
+        SyntheticLoadGenerator generator = install("{rate: 100, pattern: 'burst', burstSize: 10, events: ['DEVICE_SCREEN_OFF']}");
+        generator.start(Looper.getMainLooper());
+
+        shadowOf(Looper.getMainLooper()).idle();
+        assertEquals(10, generator.getReport().getLong("injected"));
+
+        idleFor(99);
+        assertEquals(10, generator.getReport().getLong("injected"));
+
+        idleFor(1);
+        assertEquals(20, generator.getReport().getLong("injected"));
+
+        idleFor(900);
+        assertEquals(110, generator.getReport().getLong("injected"));
+    }
+
+    @Test
+    public void maxEventsStopsTheGenerator() throws JSONException
+    {
+        SyntheticLoadGenerator generator = install("{rate: 1000, maxEvents: 25}");
+        generator.start(Looper.getMainLooper());
+
+        idleFor(1000);
+
+        assertFalse(generator.isRunning());
+        assertEquals(25, generator.getReport().getLong("injected"));
+        assertFalse(generator.injectNext());
+    }
+
+    @Test
+    public void burstsEndOnceTheGeneratorIsStopped() throws JSONException
+    {
+        SyntheticLoadGenerator generator = install("{burstSize: 50, pattern: 'burst', events: ['DEVICE_SCREEN_OFF']}");
+
+        for (int i = 0; i < 10; i++)
+        {
+            assertTrue(generator.injectNext());
+        }
+        generator.stop();
+
+        assertFalse(generator.injectNext());
+        assertEquals(10, generator.getReport().getLong("injected"));
+    }
+
+    @Test
+    public void durationStopsTheGenerator() throws JSONException
+    {
+        SyntheticLoadGenerator generator = install("{rate: 10, durationSeconds: 2}");
+        generator.start(Looper.getMainLooper());
+
+        idleFor(5000);
+
+        assertFalse(generator.isRunning());
+        assertEquals(20, generator.getReport().getLong("injected"));
+    }
+
+    @Test
+    public void lifecycleEventsPauseAndResumeTheWebView() throws JSONException
+    {
+        CordovaWebView webView = mock(CordovaWebView.class);
+        doAnswer(invocation -> {
+            plugin.onPause(false);
+            return null;
+        }).when(webView).handlePause(false);
+        plugin.webView = webView;
+
+        SyntheticLoadGenerator generator = install("{events: ['ACTIVITY_PAUSED']}");
+        generator.injectNext();
+
+        verify(webView).handlePause(false);
+        assertEquals("ACTIVITY_PAUSED", callback.states.get(0));
+        assertEquals(1, generator.getReport().getLong("dispatched"));
+
+        // stopping must not leave the WebView paused
+        generator.start(Looper.getMainLooper());
+        generator.stop();
+        verify(webView).handleResume(false);
+    }
+
+    @Test
+    public void pauseQueuedOnTheUiThreadIsDroppedOnStop() throws Exception
+    {
+        CordovaWebView webView = mock(CordovaWebView.class);
+        plugin.webView = webView;
+
+        final SyntheticLoadGenerator generator = install("{events: ['ACTIVITY_PAUSED']}");
+        Thread injector = new Thread(() -> generator.injectNext());
+        injector.start();
+        injector.join();
+
+        generator.stop();
+        shadowOf(Looper.getMainLooper()).idle();
+
+        verify(webView, never()).handlePause(false);
+        verify(webView, never()).handleResume(false);
+        JSONObject report = generator.getReport();
+        assertEquals(1, report.getLong("cancelled"));
+        assertEquals(0, report.getLong("dispatched"));
+        assertEquals(0, report.getLong("pending"));
+        assertEquals(0, report.getLong("lost"));
+    }
+
+    @Test
+    public void invalidConfigurationsAreRejected()
+    {
+        String[] invalid = {
+            "{rate: 0}",
+            "{rate: 1e-17}",
+            "{rate: 'fast'}",
+            "{pattern: 'storm'}",
+            "{burstSize: 0}",
+            "{durationSeconds: -1}",
+            "{maxEvents: -5}",
+            "{maxEvents: 1.5}",
+            "{heapSampleSeconds: -1}",
+            "{seed: 'abc'}",
+            "{ackTimeoutSeconds: 0}",
+            "{ackTimeoutSeconds: 'long'}",
+            "{inFlightCapacity: 0}",
+            "{inFlightCapacity: 100000000}",
+            "{pauseWebView: 'yes'}",
+            "{events: []}",
+            "{events: 'DEVICE_SCREEN_ON'}",
+            "{events: [1]}",
+            "{events: ['UNKNOWN']}"
+        };
+        for (final String config : invalid)
+        {
+            assertThrows(config, IllegalArgumentException.class, () -> new SyntheticLoadGenerator(plugin, new JSONObject(config)));
+        }
+    }
+
+    /*
+     * Duration, rate and bounds can be raised for long soak runs, e.g. gradle test -Psoak.seconds=3600
+     */
+    @Test
+    public void soakRunKeepsHeapLatencyAndThroughputBounded() throws Exception
+    {
+        int seconds = Integer.getInteger("soak.seconds", 60);
+        int rate = Integer.getInteger("soak.rate", 2000);
+        long maxHeapGrowthBytes = Long.getLong("soak.maxHeapGrowthMb", 16) * 1024 * 1024;
+        double maxLatencyP99Ms = Double.parseDouble(System.getProperty("soak.maxLatencyP99Ms", "1000"));
+        int warmUpSeconds = Math.max(10, seconds / 10);
+        assertTrue("soak.seconds must exceed the warm-up of " + warmUpSeconds + " s", seconds > warmUpSeconds);
+
+        SyntheticLoadGenerator generator = install("{rate: " + rate + ", seed: 7, pattern: 'random', heapSampleSeconds: 1}");
+        ShadowLog.clear();
+        // the heap is sampled on its own thread, like on a device, so its GC does not delay the ticks
+        HandlerThread heapThread = new HandlerThread("soak-heap");
+        heapThread.start();
+        long wallStartedAt = System.nanoTime();
+        generator.start(Looper.getMainLooper(), heapThread.getLooper());
+
+        long earlyHeap = 0;
+        for (int second = 0; second < seconds; second++)
+        {
+            // acknowledged in batches, like the JavaScript side does per turn of its event loop
+            for (int step = 0; step < 10; step++)
+            {
+                idleFor(100);
+                acknowledgeReceived();
+            }
+            if (second + 1 == warmUpSeconds)
+            {
+                earlyHeap = awaitHeapSample(generator);
+            }
+        }
+        generator.stop();
+        heapThread.quit();
+        double wallSeconds = (System.nanoTime() - wallStartedAt) / 1e9;
+
+        JSONObject report = generator.getReport();
+        long injected = report.getLong("injected");
+        long expected = rate * report.getLong("elapsedMs") / 1000;
+        assertTrue("injected " + injected + " of " + expected, Math.abs(injected - expected) < expected / 10);
+        assertEquals(injected, report.getLong("acknowledged"));
+        assertEquals(0, report.getLong("lost"));
+        assertEquals(0, report.getLong("overflowed"));
+        assertEquals(0, report.getLong("pending"));
+        assertTrue(report.getLong("heapSamples") >= 3);
+
+        long heapGrowth = report.getLong("heapLatestBytes") - earlyHeap;
+        assertTrue("post-GC heap grew by " + heapGrowth + " bytes", heapGrowth < maxHeapGrowthBytes);
+        double latencyP99Ms = report.getDouble("latencyP99Ms");
+        assertTrue("latencyP99Ms " + latencyP99Ms, latencyP99Ms < maxLatencyP99Ms);
+        // the generator keeps up with the configured rate in real time, not just on the simulated clock
+        double wallThroughput = injected / wallSeconds;
+        assertTrue("injected " + wallThroughput + " events per second", wallThroughput >= rate);
+        assertTrue(ShadowLog.getLogs().size() < 10);
+    }
+
+    private SyntheticLoadGenerator install(String config) throws JSONException
+    {
+        SyntheticLoadGenerator generator = new SyntheticLoadGenerator(plugin, new JSONObject(config));
+        plugin.loadGenerator = generator;
+        return generator;
+    }
+
+    private void acknowledge(long... sequences) throws JSONException
+    {
+        JSONArray args = new JSONArray();
+        for (long sequence : sequences)
+        {
+            args.put(sequence);
+        }
+        plugin.execute("acknowledgeSyntheticEvents", args, new RecordingCallbackContext());
+    }
+
+    private void acknowledgeReceived() throws JSONException
+    {
+        long[] sequences = new long[callback.sequences.size()];
+        for (int i = 0; i < sequences.length; i++)
+        {
+            sequences[i] = callback.sequences.get(i);
+        }
+        callback.sequences.clear();
+        callback.states.clear();
+        acknowledge(sequences);
+    }
+
+    /*
+     * Keeps the load running until the sampler thread, which follows the same test clock, has taken
+     * the next post-GC heap sample and returns it
+     */
+    private long awaitHeapSample(SyntheticLoadGenerator generator) throws Exception
+    {
+        long samples = generator.getReport().getLong("heapSamples");
+        long deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+        while (generator.getReport().getLong("heapSamples") == samples)
+        {
+            assertTrue("no heap sample taken", System.nanoTime() < deadline);
+            idleFor(100);
+            acknowledgeReceived();
+            Thread.sleep(10);
+        }
+        return generator.getReport().getLong("heapLatestBytes");
+    }
+
+    private static void idleFor(long ms)
+    {
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(ms));
+    }
+
+    /*
+     * Collects the sequence numbers and states of all synthetic results sent to JavaScript
+     */
+    private static class RecordingCallbackContext extends CallbackContext
+    {
+        final List<Long> sequences = new ArrayList<>();
+        final List<String> states = new ArrayList<>();
+
+        RecordingCallbackContext()
+        {
+            super("test", null);
+        }
+
+        @Override
+        public void sendPluginResult(PluginResult result)
+        {
+            String message = result.getMessage();
+            if (message == null || !message.startsWith("{"))
+            {
+                return;
+            }
+            try
+            {
+                JSONObject status = new JSONObject(message);
+                if (status.optBoolean("synthetic"))
+                {
+                    sequences.add(status.getLong("seq"));
+                    states.add(status.getString("state"));
+                }
+            }
+            catch (JSONException ex)
+            {
+                throw new AssertionError(ex);
+            }
+        }
+    }
+}
@@ -1,5 +1,24 @@
  	var exec = require("cordova/exec");
 
+    	// sequence numbers of handled load generator events, acknowledged in one batch per turn of the event loop
+    	var pendingAcknowledgements = [];
+
+    	function flushAcknowledgements() {
+    		var sequences = pendingAcknowledgements;
+    		pendingAcknowledgements = [];
+    		exec(null, null, 'Background', 'acknowledgeSyntheticEvents', sequences);
+    	}
+
+    	function acknowledge(sequence) {
+    		if (pendingAcknowledgements.push(sequence) === 1) {
+    			if (typeof Promise === "function") {
+    				Promise.resolve().then(flushAcknowledgements);
+    			} else {
+    				setTimeout(flushAcknowledgements, 0);
+    			}
+    		}
+    	}
+
     	/**
 		* Constructor.
 		*
@@ -31,7 +50,16 @@
     			return;
     		}
 
-    		exec(successCallback, errorCallback, 'Background', 'registerDevicePowerChanges', []);
+    		exec(function (result) {
+    			try {
+    				successCallback(result);
+    			} finally {
+    				// acknowledge events of the load generator once handled, so it can measure latency and loss up to here
+    				if (result && result.synthetic === true) {
+    					acknowledge(result.seq);
+    				}
+    			}
+    		}, errorCallback, 'Background', 'registerDevicePowerChanges', []);
     	};
 
     	Background.prototype.unregister = function (successCallback, errorCallback) {
@@ -111,5 +139,69 @@
     		}
     		exec(successCallback, errorCallback, 'Background', 'getStartupTimestamp', []);
     	}
+
+    	/**
+		* Start injecting synthetic screen, dream, lifecycle and alarm events (debuggable builds only).
+		*
+		* @param {Function} successCallback
+		* @param {Function} errorCallback
+		* @param {Object} parameters   optional: rate, pattern, burstSize, durationSeconds, maxEvents, heapSampleSeconds, ackTimeoutSeconds, inFlightCapacity, pauseWebView, events, seed
+		*/
+    	Background.prototype.startLoadGenerator = function (successCallback, errorCallback, parameters) {
+    		if (errorCallback == null) {
+    			errorCallback = function () {
+    			};
+    		}
+
+    		if (typeof errorCallback != "function") {
+    			console.log("Background.startLoadGenerator failure: failure parameter not a function");
+    			return;
+    		}
+
+    		if (typeof successCallback != "function") {
+    			console.log("Background.startLoadGenerator failure: success callback parameter must be a function");
+    			return;
+    		}
+
+    		exec(successCallback, errorCallback, 'Background', 'startLoadGenerator', [parameters || {}]);
+    	};
+
+    	Background.prototype.stopLoadGenerator = function (successCallback, errorCallback) {
+    		if (errorCallback == null) {
+    			errorCallback = function () {
+    			};
+    		}
+
+    		if (typeof errorCallback != "function") {
+    			console.log("Background.stopLoadGenerator failure: failure parameter not a function");
+    			return;
+    		}
+
+    		if (typeof successCallback != "function") {
+    			console.log("Background.stopLoadGenerator failure: success callback parameter must be a function");
+    			return;
+    		}
+
+    		exec(successCallback, errorCallback, 'Background', 'stopLoadGenerator', []);
+    	};
+
+    	Background.prototype.getLoadGeneratorReport = function (successCallback, errorCallback) {
+    		if (errorCallback == null) {
+    			errorCallback = function () {
+    			};
+    		}
+
+    		if (typeof errorCallback != "function") {
+    			console.log("Background.getLoadGeneratorReport failure: failure parameter not a function");
+    			return;
+    		}
+
+    		if (typeof successCallback != "function") {
+    			console.log("Background.getLoadGeneratorReport failure: success callback parameter must be a function");
+    			return;
+    		}
+
+    		exec(successCallback, errorCallback, 'Background', 'getLoadGeneratorReport', []);
+    	};
     	var background = new Background();
     	module.exports = background;
\ No newline at end of file